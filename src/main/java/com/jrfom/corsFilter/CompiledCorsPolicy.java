@@ -0,0 +1,168 @@
+package com.jrfom.corsFilter;
+
+import java.util.Set;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>A {@link CorsPolicy} compiled from a snapshot of a small
+ * {@link CorsFilterConfig}.</p>
+ *
+ * <p>This policy caches work up front. The configuration's sets are copied
+ * into arrays alongside their hash codes, and a lookup is a linear scan over
+ * those {@code int}s followed by at most one {@link String#equals(Object)}.
+ * The response header values are joined once, and the credentials and max
+ * age settings are read once. The cached values are instance fields, so the
+ * JIT loads them on every request rather than folding them into the
+ * code.</p>
+ *
+ * <p>Binding the configuration into the code itself is possible even on
+ * Java 8, e.g. through the {@code dynamicInvoker()} of a
+ * {@code static final MutableCallSite}, which the JIT treats as a constant.
+ * But such a call site belongs to a class, not to an instance: every filter
+ * in the JVM would share one configuration, and each recompile would
+ * deoptimize all of them. Giving each configuration its own class means
+ * generating classes at runtime, and the hidden classes that make that cheap
+ * and unloadable are not available on the Java 8 target. This policy keeps
+ * the array scan instead.</p>
+ *
+ * <p>Scanning only pays off while the sets are small. Use
+ * {@link #canCompile(CorsFilterConfig)} to decide if a configuration should
+ * be compiled.</p>
+ */
+final class CompiledCorsPolicy extends CorsPolicy {
+  /**
+   * The largest number of entries any one set may have for the configuration
+   * to be compiled.
+   */
+  static final int MAX_ENTRIES = 16;
+
+  private final boolean anyOrigin;
+  private final int[] originHashes;
+  private final String[] origins;
+  private final int[] methodHashes;
+  private final String[] methods;
+  private final int[] headerHashes;
+  private final String[] headers;
+
+  private final boolean supportsCredentials;
+  private final String maxAge;
+  private final String allowMethods;
+  private final String allowHeaders;
+  private final String exposeHeaders;
+
+  CompiledCorsPolicy(CorsFilterConfig config, long version) {
+    super(config, version);
+
+    this.origins = toArray(config.getOrigins());
+    this.originHashes = hashes(this.origins);
+    this.anyOrigin = this.origins.length == 1 && this.origins[0].equals("*");
+    this.methods = toArray(config.getMethods());
+    this.methodHashes = hashes(this.methods);
+    this.headers = toArray(config.getHeaders());
+    this.headerHashes = hashes(this.headers);
+    String[] exposed = toArray(config.getExposedHeaders());
+
+    this.supportsCredentials = config.getSupportsCredentials();
+    this.maxAge = (config.getPreflightMaxAge() >= 0) ?
+      config.getPreflightMaxAge().toString() : null;
+    this.allowMethods = String.join(",", this.methods);
+    this.allowHeaders = String.join(",", this.headers);
+    this.exposeHeaders = (exposed.length > 0) ? String.join(",", exposed) : null;
+  }
+
+  /**
+   * <p>Determines if a configuration is small enough to benefit from being
+   * compiled.</p>
+   *
+   * @param config The configuration to check.
+   * @return {@code true} if no set in the configuration has more than
+   *         {@link #MAX_ENTRIES} entries.
+   */
+  static boolean canCompile(CorsFilterConfig config) {
+    return config.getOrigins().size() <= MAX_ENTRIES &&
+      config.getMethods().size() <= MAX_ENTRIES &&
+      config.getHeaders().size() <= MAX_ENTRIES &&
+      config.getExposedHeaders().size() <= MAX_ENTRIES;
+  }
+
+  @Override
+  boolean originIsAllowed(String origin) {
+    return this.anyOrigin || contains(this.originHashes, this.origins, origin);
+  }
+
+  @Override
+  boolean originIsListed(String origin) {
+    return contains(this.originHashes, this.origins, origin);
+  }
+
+  @Override
+  boolean methodIsAllowed(String method) {
+    return contains(this.methodHashes, this.methods, method);
+  }
+
+  @Override
+  boolean anyHeaderIsAllowed(String[] headers) {
+    for (String header : headers) {
+      if (contains(this.headerHashes, this.headers, header)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  int originListSize() {
+    return this.origins.length;
+  }
+
+  @Override
+  void addSimpleResponseHeaders(HttpServletResponse response, String origin) {
+    response.addHeader(CorsHeaders.AllowOrigin, origin);
+    if (this.supportsCredentials) {
+      response.addHeader(CorsHeaders.AllowCredentials, "true");
+    }
+    if (this.exposeHeaders != null) {
+      response.addHeader(CorsHeaders.ExposeHeaders, this.exposeHeaders);
+    }
+  }
+
+  @Override
+  void addPreflightResponseHeaders(HttpServletResponse response, String origin) {
+    response.addHeader(CorsHeaders.AllowOrigin, origin);
+    if (this.supportsCredentials) {
+      response.addHeader(CorsHeaders.AllowCredentials, "true");
+    }
+    if (this.maxAge != null) {
+      response.addHeader(CorsHeaders.MaxAge, this.maxAge);
+    }
+    response.addHeader(CorsHeaders.AllowMethods, this.allowMethods);
+    response.addHeader(CorsHeaders.AllowHeaders, this.allowHeaders);
+  }
+
+  private static boolean contains(int[] hashes, String[] values, String value) {
+    if (value == null) {
+      return false;
+    }
+
+    int hash = value.hashCode();
+    for (int i = 0; i < hashes.length; i++) {
+      if (hashes[i] == hash && values[i].equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String[] toArray(Set<String> set) {
+    return set.toArray(new String[0]);
+  }
+
+  private static int[] hashes(String[] values) {
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = values[i].hashCode();
+    }
+    return result;
+  }
+}
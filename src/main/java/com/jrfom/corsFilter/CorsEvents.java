@@ -0,0 +1,114 @@
+package com.jrfom.corsFilter;
+
+/**
+ * <p>Emits the Flight Recorder events of {@link CorsFilter}.</p>
+ *
+ * <p>The Flight Recorder API is not present on every Java 8 runtime (it was
+ * added in 8u262). Whether {@code jdk.jfr.Event} can be loaded is checked
+ * once; when it can't, every method here does nothing and the event classes
+ * are never loaded.</p>
+ *
+ * <p>Each {@code begin} method returns {@code null} when Flight Recorder is
+ * missing or the event is not enabled in any recording. Callers must only
+ * pass non-null events to the matching {@code commit} method, which lets them
+ * skip computing the event's fields entirely.</p>
+ */
+final class CorsEvents {
+  private static final boolean available = isAvailable(CorsEvents.class.getClassLoader());
+
+  private CorsEvents() {}
+
+  static boolean isAvailable() {
+    return available;
+  }
+
+  static boolean isAvailable(ClassLoader loader) {
+    try {
+      Class.forName("jdk.jfr.Event", false, loader);
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  static Object beginOrigin() {
+    return available ? Recorder.beginOrigin() : null;
+  }
+
+  static void commitOrigin(Object event, String origin, boolean allowed, int originListSize) {
+    Recorder.commitOrigin(event, origin, allowed, originListSize);
+  }
+
+  static Object beginPreflight() {
+    return available ? Recorder.beginPreflight() : null;
+  }
+
+  static void commitPreflight(Object event, String origin, String rejectionReason, int originListSize) {
+    Recorder.commitPreflight(event, origin, rejectionReason, originListSize);
+  }
+
+  static Object beginRejection() {
+    return available ? Recorder.beginRejection() : null;
+  }
+
+  static void commitRejection(Object event, String origin, String method, String reason, int originListSize) {
+    Recorder.commitRejection(event, origin, method, reason, originListSize);
+  }
+
+  /**
+   * <p>The only class referring to the event types. It is not loaded unless
+   * Flight Recorder is available.</p>
+   */
+  private static final class Recorder {
+    static Object beginOrigin() {
+      CorsOriginEvent event = new CorsOriginEvent();
+      if (!event.isEnabled()) {
+        return null;
+      }
+      event.begin();
+      return event;
+    }
+
+    static void commitOrigin(Object e, String origin, boolean allowed, int originListSize) {
+      CorsOriginEvent event = (CorsOriginEvent) e;
+      event.end();
+      event.origin = origin;
+      event.decision = allowed ? "allowed" : "rejected";
+      event.originListSize = originListSize;
+      event.commit();
+    }
+
+    static Object beginPreflight() {
+      CorsPreflightEvent event = new CorsPreflightEvent();
+      if (!event.isEnabled()) {
+        return null;
+      }
+      event.begin();
+      return event;
+    }
+
+    static void commitPreflight(Object e, String origin, String rejectionReason, int originListSize) {
+      CorsPreflightEvent event = (CorsPreflightEvent) e;
+      event.end();
+      event.origin = origin;
+      event.decision = (rejectionReason == null) ? "allowed" : "rejected";
+      event.reason = rejectionReason;
+      event.originListSize = originListSize;
+      event.commit();
+    }
+
+    static Object beginRejection() {
+      CorsRejectionEvent event = new CorsRejectionEvent();
+      return event.isEnabled() ? event : null;
+    }
+
+    static void commitRejection(Object e, String origin, String method, String reason, int originListSize) {
+      CorsRejectionEvent event = (CorsRejectionEvent) e;
+      event.origin = origin;
+      event.method = method;
+      event.reason = reason;
+      event.originListSize = originListSize;
+      event.commit();
+    }
+  }
+}
@@ -2,7 +2,6 @@ package com.jrfom.corsFilter;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Set;
 
 import javax.servlet.*;
@@ -55,11 +54,58 @@ import org.slf4j.LoggerFactory;
  *     <code>cors.support.credentials</code>: boolean indicating if the servlet
  *     supports CORS requests with credentials. Default: "true"
  *   </li>
+ *   <li>
+ *     <code>cors.preflight.ratelimit</code>: number of preflight requests
+ *     per second allowed from each listed origin. Setting this enables the
+ *     {@link PreflightRateLimiter}. Default: not set (no limit)
+ *   </li>
+ *   <li>
+ *     <code>cors.preflight.ratelimit.burst</code>: number of preflight
+ *     requests a listed origin may send at once. Default: 10
+ *   </li>
+ *   <li>
+ *     <code>cors.preflight.ratelimit.global</code>: number of preflight
+ *     requests per second allowed for all other origins combined, including
+ *     those only allowed by the "*" wildcard. <strong>Required</strong> when
+ *     <code>cors.allowed.origins</code> includes "*" (including when it is
+ *     not set), since that rate then limits every preflight the server
+ *     accepts. Otherwise the default is 10
+ *   </li>
+ *   <li>
+ *     <code>cors.preflight.ratelimit.global.burst</code>: number of preflight
+ *     requests those other origins may send at once. Default: 10
+ *   </li>
+ *   <li>
+ *     <code>cors.preflight.ratelimit.stripes</code>: number of per-origin
+ *     buckets kept by the limiter. Default: 1024
+ *   </li>
+ *   <li>
+ *     <code>cors.policy.specialize</code>: boolean indicating if the
+ *     configuration should be compiled into a specialized policy when it is
+ *     small enough. See {@link #setSpecializePolicy(Boolean)}. Default: "false"
+ *   </li>
  * </ul>
+ *
+ * <p>Preflight requests over the limit are answered with a 429 status and
+ * are not passed down the filter chain. Origins allowed only through the "*"
+ * wildcard count against the global limit.</p>
+ *
+ * <p>When running under Java Flight Recorder the filter emits events for
+ * origin resolution, preflight evaluation and rejected requests. They are
+ * disabled unless enabled by the recording's settings, e.g. with the
+ * {@code com/jrfom/corsFilter/cors.jfc} profile bundled in this jar. On Java 8
+ * runtimes without Flight Recorder the events are simply not emitted.</p>
  */
 public class CorsFilter implements Filter {
   private static final Logger log = LoggerFactory.getLogger(CorsFilter.class);
+  private static final int SC_TOO_MANY_REQUESTS = 429;
   private CorsFilterConfig config;
+  private PreflightRateLimiter preflightRateLimiter;
+  private Boolean specializePolicy = false;
+  private volatile CorsPolicy policy;
+  // The compiled policy does not call originIsAllowed or toCSV, so it must
+  // not be used by subclasses that override them
+  private final boolean policyMethodsOverridden = overridesPolicyMethods(this.getClass());
 
   /**
    * <p>Creates an instance of {@link CorsFilter} that allows CORS requests
@@ -128,6 +174,45 @@ public class CorsFilter implements Filter {
       strCredentials = (strCredentials.equals("0")) ? "false" : "true";
     }
     this.config.setSupportsCredentials(Boolean.valueOf(strCredentials));
+
+    String strSpecialize = filterConfig.getInitParameter("cors.policy.specialize");
+    if (strSpecialize != null) {
+      this.specializePolicy = Boolean.valueOf(strSpecialize);
+    }
+
+    String strRateLimit = filterConfig.getInitParameter("cors.preflight.ratelimit");
+    if (strRateLimit != null) {
+      String strBurst = filterConfig.getInitParameter("cors.preflight.ratelimit.burst");
+      if (strBurst == null) {
+        strBurst = "10";
+      }
+      String strGlobalRateLimit = filterConfig.getInitParameter("cors.preflight.ratelimit.global");
+      if (strGlobalRateLimit == null) {
+        // With the wildcard every origin shares the global bucket, so its
+        // rate is the limit for the whole server and must be chosen explicitly
+        if (this.config.getOrigins().contains("*")) {
+          throw new ServletException(
+            "cors.preflight.ratelimit.global must be set when cors.allowed.origins includes \"*\""
+          );
+        }
+        strGlobalRateLimit = "10";
+      }
+      String strGlobalBurst = filterConfig.getInitParameter("cors.preflight.ratelimit.global.burst");
+      if (strGlobalBurst == null) {
+        strGlobalBurst = "10";
+      }
+      String strStripes = filterConfig.getInitParameter("cors.preflight.ratelimit.stripes");
+      if (strStripes == null) {
+        strStripes = "1024";
+      }
+      this.preflightRateLimiter = new PreflightRateLimiter(
+        Integer.valueOf(strStripes),
+        Double.valueOf(strRateLimit),
+        Integer.valueOf(strBurst),
+        Double.valueOf(strGlobalRateLimit),
+        Integer.valueOf(strGlobalBurst)
+      );
+    }
   }
 
   @Override
@@ -143,34 +228,44 @@ public class CorsFilter implements Filter {
       return;
     }
 
+    CorsPolicy policy = this.currentPolicy();
+    boolean originAllowed = this.resolveOrigin(policy, requestOrigin);
+
+    // Too many preflights from this origin? Reject before doing any more work.
+    // Only listed origins get their own bucket; wildcard matches and unknown
+    // origins share the global one.
+    if (this.preflightRateLimiter != null &&
+      this.isPreflightRequest(request) &&
+      !this.preflightRateLimiter.tryAcquire(
+        requestOrigin,
+        originAllowed && policy.originIsListed(requestOrigin)
+      ))
+    {
+      log.debug("Rejecting preflight request. Rate limit exceeded for origin: `{}`", requestOrigin);
+      this.recordRejection(policy, request, requestOrigin, "rate limit exceeded");
+      response.setStatus(SC_TOO_MANY_REQUESTS);
+      return;
+    }
+
     // Origin isn't in the allowed list? No more CORS processing
-    if (!this.originIsAllowed(requestOrigin)) {
+    if (!originAllowed) {
       log.debug("Aborting CORS processing. Origin not allowed: `{}`", requestOrigin);
+      this.recordRejection(policy, request, requestOrigin, "origin not allowed");
       chain.doFilter(req, res);
       return;
     }
 
     // Request method isn't in allowed list? No more CORS processing
-    if (request.getMethod() == null ||
-      !this.config.getMethods().contains(request.getMethod()) )
-    {
+    if (request.getMethod() == null || !policy.methodIsAllowed(request.getMethod())) {
       log.debug("Aborting CORS processing: Method not allowed: `{}`", request.getMethod());
+      this.recordRejection(policy, request, requestOrigin, "method not allowed");
       chain.doFilter(req, res);
       return;
     }
 
     if (this.isSimpleMethod(request)) {
-      // Section 6.1, step 3
-      this.addOriginAndCredentialsResponseHeaders(response, requestOrigin);
-
-      // Section 6.1, step 4
-      if (this.config.getExposedHeaders().size() > 0) {
-        log.debug("Setting exposed headers header");
-        response.addHeader(
-          CorsHeaders.ExposeHeaders,
-          this.toCSV(this.config.getExposedHeaders())
-        );
-      }
+      // Section 6.1, steps 3 & 4
+      policy.addSimpleResponseHeaders(response, requestOrigin);
 
       log.debug("Simple CORS request complete");
       chain.doFilter(req, res);
@@ -184,11 +279,14 @@ public class CorsFilter implements Filter {
 
     /// Begin preflight request processing
     log.debug("Starting to process preflight CORS request");
+    Object event = CorsEvents.beginPreflight();
 
     // Section 6.2, step 3 & 5
     String method = request.getHeader(CorsHeaders.RequestMethod);
-    if (method == null || !this.config.getMethods().contains(method)) {
+    if (method == null || !policy.methodIsAllowed(method)) {
       log.debug("Aborting CORS processing. Request method did not validate: `{}`", method);
+      this.recordRejection(policy, request, requestOrigin, "request method not allowed");
+      this.recordPreflight(policy, event, requestOrigin, "request method not allowed");
       chain.doFilter(req, res);
       return;
     }
@@ -203,45 +301,25 @@ public class CorsFilter implements Filter {
       headers = (strHeaders.indexOf(",") > -1) ?
         strHeaders.split(",") : new String[] { strHeaders.trim() };
     }
-    List<String> listHeaders = Arrays.asList(headers);
-    listHeaders.stream().map((h) -> h.toLowerCase());
 
     // Section 6.2, step 6
-    long matches = listHeaders.stream()
-      .filter( (h) -> this.config.getHeaders().contains(h) )
-      .count();
-    if (matches == 0) {
+    if (!policy.anyHeaderIsAllowed(headers)) {
       log.debug(
         "Aborting CORS processing. Request headers header invalid: `{}`",
         strHeaders
       );
+      this.recordRejection(policy, request, requestOrigin, "request headers not allowed");
+      this.recordPreflight(policy, event, requestOrigin, "request headers not allowed");
       chain.doFilter(req, res);
       return;
     }
     log.debug("Request headers header validated");
 
-    // Section 6.2, step 7
-    this.addOriginAndCredentialsResponseHeaders(response, requestOrigin);
-
-    // Section 6.2, step 8
-    if (this.config.getPreflightMaxAge() >= 0) {
-      log.debug("Setting preflight cache max age header to: `{}`", this.config.getPreflightMaxAge());
-      response.addHeader(CorsHeaders.MaxAge, this.config.getPreflightMaxAge().toString());
-    }
-
-    // Section 6.2, step 9
-    response.addHeader(
-      CorsHeaders.AllowMethods,
-      this.toCSV(this.config.getMethods())
-    );
-
-    // Section 6.2, step 10
-    response.addHeader(
-      CorsHeaders.AllowHeaders,
-      this.toCSV(this.config.getHeaders())
-    );
+    // Section 6.2, steps 7 through 10
+    policy.addPreflightResponseHeaders(response, requestOrigin);
 
     log.debug("CORS processing finished");
+    this.recordPreflight(policy, event, requestOrigin, null);
     chain.doFilter(req, res);
   }
 
@@ -256,6 +334,89 @@ public class CorsFilter implements Filter {
     this.config = config;
   }
 
+  public Boolean getSpecializePolicy() {
+    return this.specializePolicy;
+  }
+
+  /**
+   * <p>When enabled, the configuration is compiled into a policy specialized
+   * for it as long as none of its sets has more than 16 entries. The
+   * specialized policy scans small arrays instead of querying the sets, and
+   * builds its response header values once. Larger configurations are
+   * evaluated as usual.</p>
+   *
+   * <p>The policy is compiled again whenever the configuration is modified
+   * through its methods. Changes made directly to the sets returned by the
+   * configuration's getters are <strong>not</strong> picked up; call a
+   * setter on the configuration after making such changes.</p>
+   *
+   * <p>Compiling copies every set and builds every header value, and the
+   * first request after each change pays for it. If the configuration
+   * changes about as often as requests arrive, nearly every request compiles
+   * a new policy and this mode is slower than leaving it off.</p>
+   *
+   * <p>The specialized policy does not call {@link #originIsAllowed(String)}
+   * or {@link #toCSV(Set)}. Subclasses that override either of them are
+   * always evaluated as usual, and this setting has no effect on them.</p>
+   *
+   * @param specializePolicy Default: {@code false}.
+   */
+  public void setSpecializePolicy(Boolean specializePolicy) {
+    this.specializePolicy = specializePolicy;
+    this.policy = null;
+  }
+
+  public PreflightRateLimiter getPreflightRateLimiter() {
+    return this.preflightRateLimiter;
+  }
+
+  /**
+   * <p>Limits the rate of preflight requests accepted by this filter. Set
+   * to {@code null} (the default) to accept any number of preflights.</p>
+   *
+   * @param preflightRateLimiter The limiter to use.
+   */
+  public void setPreflightRateLimiter(PreflightRateLimiter preflightRateLimiter) {
+    this.preflightRateLimiter = preflightRateLimiter;
+  }
+
+  private CorsPolicy currentPolicy() {
+    CorsPolicy policy = this.policy;
+    if (policy == null || !policy.isCurrent(this.config)) {
+      // Read the version before the sets so that a change made while the
+      // policy is built makes it stale instead of being missed
+      long version = this.config.getVersion();
+      if (this.specializePolicy && !this.policyMethodsOverridden &&
+          CompiledCorsPolicy.canCompile(this.config))
+      {
+        log.debug("Compiling specialized CORS policy");
+        policy = new CompiledCorsPolicy(this.config, version);
+      } else {
+        policy = new GenericPolicy(this.config, version);
+      }
+      this.policy = policy;
+    }
+    return policy;
+  }
+
+  private static boolean overridesPolicyMethods(Class<?> type) {
+    for (Class<?> c = type; c != CorsFilter.class; c = c.getSuperclass()) {
+      if (declares(c, "originIsAllowed", String.class) || declares(c, "toCSV", Set.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean declares(Class<?> type, String name, Class<?>... parameterTypes) {
+    try {
+      type.getDeclaredMethod(name, parameterTypes);
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
   private void addOriginAndCredentialsResponseHeaders(HttpServletResponse response, String origin) {
     log.debug("Adding origin header set to: `{}`", origin);
     response.addHeader(CorsHeaders.AllowOrigin, origin);
@@ -265,6 +426,32 @@ public class CorsFilter implements Filter {
     }
   }
 
+  private boolean resolveOrigin(CorsPolicy policy, String origin) {
+    Object event = CorsEvents.beginOrigin();
+    boolean result = policy.originIsAllowed(origin);
+
+    if (event != null) {
+      CorsEvents.commitOrigin(event, origin, result, policy.originListSize());
+    }
+
+    return result;
+  }
+
+  private void recordPreflight(CorsPolicy policy, Object event, String origin, String rejectionReason) {
+    if (event != null) {
+      CorsEvents.commitPreflight(event, origin, rejectionReason, policy.originListSize());
+    }
+  }
+
+  private void recordRejection(CorsPolicy policy, HttpServletRequest request, String origin, String reason) {
+    Object event = CorsEvents.beginRejection();
+    if (event != null) {
+      CorsEvents.commitRejection(
+        event, origin, request.getMethod(), reason, policy.originListSize()
+      );
+    }
+  }
+
   protected Boolean isPreflightRequest(HttpServletRequest request) {
     Boolean result = false;
 
@@ -310,14 +497,69 @@ public class CorsFilter implements Filter {
   }
 
   protected String toCSV(Set<String> set) {
-    StringBuilder result = new StringBuilder();
+    return String.join(",", set);
+  }
+
+  /**
+   * <p>Evaluates requests directly against the live configuration, through
+   * this filter's overridable methods.</p>
+   */
+  private class GenericPolicy extends CorsPolicy {
+    GenericPolicy(CorsFilterConfig config, long version) {
+      super(config, version);
+    }
+
+    @Override
+    boolean originIsAllowed(String origin) {
+      return CorsFilter.this.originIsAllowed(origin);
+    }
+
+    @Override
+    boolean originIsListed(String origin) {
+      return CorsFilter.this.config.getOrigins().contains(origin);
+    }
+
+    @Override
+    boolean methodIsAllowed(String method) {
+      return CorsFilter.this.config.getMethods().contains(method);
+    }
+
+    @Override
+    boolean anyHeaderIsAllowed(String[] headers) {
+      return Arrays.stream(headers)
+        .anyMatch( (h) -> CorsFilter.this.config.getHeaders().contains(h) );
+    }
 
-    set.stream().forEach( (item) ->
-        result.append(
-          String.format("%s,", item)
-        )
-    );
+    @Override
+    int originListSize() {
+      return CorsFilter.this.config.getOrigins().size();
+    }
+
+    @Override
+    void addSimpleResponseHeaders(HttpServletResponse response, String origin) {
+      CorsFilter.this.addOriginAndCredentialsResponseHeaders(response, origin);
 
-    return result.substring(0, result.lastIndexOf(","));
+      if (CorsFilter.this.config.getExposedHeaders().size() > 0) {
+        log.debug("Setting exposed headers header");
+        response.addHeader(
+          CorsHeaders.ExposeHeaders,
+          CorsFilter.this.toCSV(CorsFilter.this.config.getExposedHeaders())
+        );
+      }
+    }
+
+    @Override
+    void addPreflightResponseHeaders(HttpServletResponse response, String origin) {
+      CorsFilterConfig config = CorsFilter.this.config;
+      CorsFilter.this.addOriginAndCredentialsResponseHeaders(response, origin);
+
+      if (config.getPreflightMaxAge() >= 0) {
+        log.debug("Setting preflight cache max age header to: `{}`", config.getPreflightMaxAge());
+        response.addHeader(CorsHeaders.MaxAge, config.getPreflightMaxAge().toString());
+      }
+
+      response.addHeader(CorsHeaders.AllowMethods, CorsFilter.this.toCSV(config.getMethods()));
+      response.addHeader(CorsHeaders.AllowHeaders, CorsFilter.this.toCSV(config.getHeaders()));
+    }
   }
 }
\ No newline at end of file
@@ -1,28 +1,27 @@
 package com.jrfom.corsFilter;
 
-import java.util.Collections;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Provides a simple mechanism for configuring an instance of
  * {@link CorsFilter}.</p>
+ *
+ * <p>The configuration may be changed while the filter is serving requests.
+ * The default sets are sorted, lock free, and can be iterated while they are
+ * being modified, so readers are never blocked by writers. Sets supplied via
+ * the setters should offer the same guarantees if they are going to be
+ * modified at runtime.</p>
  */
 public class CorsFilterConfig {
-  private Set<String> exposedHeaders = Collections.synchronizedSet(
-    new TreeSet<String>()
-  );
-  private Set<String> headers = Collections.synchronizedSet(
-    new TreeSet<String>()
-  );
-  private Set<String> methods = Collections.synchronizedSet(
-    new TreeSet<String>()
-  );
-  private Set<String> origins = Collections.synchronizedSet(
-    new TreeSet<String>()
-  );
+  private Set<String> exposedHeaders = new ConcurrentSkipListSet<>();
+  private Set<String> headers = new ConcurrentSkipListSet<>();
+  private Set<String> methods = new ConcurrentSkipListSet<>();
+  private Set<String> origins = new ConcurrentSkipListSet<>();
   private Boolean supportsCredentials = true;
   private Integer preflightMaxAge = 1800;
+  private final AtomicLong version = new AtomicLong();
 
   /**
    * <p>Creates a basic {@linkplain CorsFilterConfig} with all parameters set
@@ -81,6 +80,7 @@ public class CorsFilterConfig {
     String h = header.toLowerCase();
     if (!this.headers.contains(h)) {
       this.headers.add(h);
+      this.version.incrementAndGet();
     }
   }
 
@@ -99,10 +99,12 @@ public class CorsFilterConfig {
     String h = header.toLowerCase();
     if (this.headers.contains(h)) {
       this.headers.remove(h);
+      this.version.incrementAndGet();
     }
 
     if (this.exposedHeaders.contains(h)) {
       this.exposedHeaders.remove(h);
+      this.version.incrementAndGet();
     }
   }
 
@@ -121,10 +123,12 @@ public class CorsFilterConfig {
     String h = header.toLowerCase();
     if (!this.exposedHeaders.contains(h)) {
       this.exposedHeaders.add(h);
+      this.version.incrementAndGet();
     }
 
     if (!this.headers.contains(h)) {
       this.headers.add(h);
+      this.version.incrementAndGet();
     }
   }
 
@@ -144,6 +148,7 @@ public class CorsFilterConfig {
     String h = header.toLowerCase();
     if (this.exposedHeaders.contains(h)) {
       this.exposedHeaders.remove(h);
+      this.version.incrementAndGet();
     }
   }
 
@@ -156,6 +161,7 @@ public class CorsFilterConfig {
   public void addMethod(String method) {
     if (!this.methods.contains(method)) {
       this.methods.add(method);
+      this.version.incrementAndGet();
     }
   }
 
@@ -168,6 +174,7 @@ public class CorsFilterConfig {
   public void removeMethod(String method) {
     if (this.methods.contains(method)) {
       this.methods.remove(method);
+      this.version.incrementAndGet();
     }
   }
 
@@ -184,6 +191,7 @@ public class CorsFilterConfig {
   public void addOrigin(String origin) {
     if (!this.origins.contains(origin)) {
       this.origins.add(origin);
+      this.version.incrementAndGet();
     }
   }
 
@@ -196,10 +204,23 @@ public class CorsFilterConfig {
   public void removeOrigin(String origin) {
     if (this.origins.contains(origin)) {
       this.origins.remove(origin);
+      this.version.incrementAndGet();
     }
   }
 
 
+  /**
+   * <p>A counter that changes every time this configuration is modified
+   * through one of its methods. Changes made directly to the sets returned
+   * by the getters are not counted.</p>
+   *
+   * @return The current modification count.
+   */
+  long getVersion() {
+    return this.version.get();
+  }
+
+
   /// Boilerplate getters and setters
 
   public Set<String> getExposedHeaders() {
@@ -208,6 +229,7 @@ public class CorsFilterConfig {
 
   public void setExposedHeaders(Set<String> exposedHeaders) {
     this.exposedHeaders = exposedHeaders;
+    this.version.incrementAndGet();
   }
 
   public Set<String> getHeaders() {
@@ -216,6 +238,7 @@ public class CorsFilterConfig {
 
   public void setHeaders(Set<String> headers) {
     this.headers = headers;
+    this.version.incrementAndGet();
   }
 
   public Set<String> getMethods() {
@@ -224,6 +247,7 @@ public class CorsFilterConfig {
 
   public void setMethods(Set<String> methods) {
     this.methods = methods;
+    this.version.incrementAndGet();
   }
 
   public Set<String> getOrigins() {
@@ -232,6 +256,7 @@ public class CorsFilterConfig {
 
   public void setOrigins(Set<String> origins) {
     this.origins = origins;
+    this.version.incrementAndGet();
   }
 
   public Boolean getSupportsCredentials() {
@@ -240,6 +265,7 @@ public class CorsFilterConfig {
 
   public void setSupportsCredentials(Boolean supportsCredentials) {
     this.supportsCredentials = supportsCredentials;
+    this.version.incrementAndGet();
   }
 
   public Integer getPreflightMaxAge() {
@@ -255,5 +281,6 @@ public class CorsFilterConfig {
    */
   public void setPreflightMaxAge(Integer preflightMaxAge) {
     this.preflightMaxAge = preflightMaxAge;
+    this.version.incrementAndGet();
   }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.jrfom.corsFilter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event emitted each time {@link CorsFilter} resolves a
+ * request's origin against the allowed list. The event's duration is the
+ * time spent resolving the origin.</p>
+ */
+@Name("com.jrfom.corsFilter.OriginResolution")
+@Label("CORS Origin Resolution")
+@Category("CORS Filter")
+@Description("Resolution of a request origin against the allowed origins")
+final class CorsOriginEvent extends jdk.jfr.Event {
+  @Label("Origin")
+  String origin;
+
+  @Label("Decision")
+  @Description("Either \"allowed\" or \"rejected\"")
+  String decision;
+
+  @Label("Origin List Size")
+  @Description("Number of origins in the allowed list")
+  int originListSize;
+}
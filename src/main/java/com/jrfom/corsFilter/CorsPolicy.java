@@ -0,0 +1,59 @@
+package com.jrfom.corsFilter;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>The decisions {@link CorsFilter} needs to make about a request, taken
+ * from a particular version of a {@link CorsFilterConfig}.</p>
+ */
+abstract class CorsPolicy {
+  private final CorsFilterConfig config;
+  private final long version;
+
+  CorsPolicy(CorsFilterConfig config, long version) {
+    this.config = config;
+    this.version = version;
+  }
+
+  /**
+   * <p>Determines if this policy still reflects the given configuration.</p>
+   *
+   * @param config The configuration currently used by the filter.
+   * @return {@code false} if the configuration has been replaced or
+   *         modified since this policy was created.
+   */
+  boolean isCurrent(CorsFilterConfig config) {
+    return this.config == config && config.getVersion() == this.version;
+  }
+
+  abstract boolean originIsAllowed(String origin);
+
+  /**
+   * @param origin The request origin.
+   * @return {@code true} if the origin is explicitly in the allowed list, as
+   *         opposed to only being allowed by the "*" wildcard.
+   */
+  abstract boolean originIsListed(String origin);
+
+  abstract boolean methodIsAllowed(String method);
+
+  /**
+   * @param headers The names listed in the request headers header.
+   * @return {@code true} if at least one of the names is supported.
+   */
+  abstract boolean anyHeaderIsAllowed(String[] headers);
+
+  abstract int originListSize();
+
+  /**
+   * <p>Adds the response headers for a simple CORS request (section 6.1,
+   * steps 3 and 4).</p>
+   */
+  abstract void addSimpleResponseHeaders(HttpServletResponse response, String origin);
+
+  /**
+   * <p>Adds the response headers for a preflight CORS request (section 6.2,
+   * steps 7 through 10).</p>
+   */
+  abstract void addPreflightResponseHeaders(HttpServletResponse response, String origin);
+}
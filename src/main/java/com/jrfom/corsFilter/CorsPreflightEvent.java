@@ -0,0 +1,32 @@
+package com.jrfom.corsFilter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event emitted each time {@link CorsFilter} evaluates a
+ * preflight request. The event's duration is the time spent validating the
+ * request and adding the response headers.</p>
+ */
+@Name("com.jrfom.corsFilter.PreflightEvaluation")
+@Label("CORS Preflight Evaluation")
+@Category("CORS Filter")
+@Description("Evaluation of a CORS preflight request")
+final class CorsPreflightEvent extends jdk.jfr.Event {
+  @Label("Origin")
+  String origin;
+
+  @Label("Decision")
+  @Description("Either \"allowed\" or \"rejected\"")
+  String decision;
+
+  @Label("Reason")
+  @Description("Why the preflight was rejected, if it was")
+  String reason;
+
+  @Label("Origin List Size")
+  @Description("Number of origins in the allowed list")
+  int originListSize;
+}
@@ -0,0 +1,29 @@
+package com.jrfom.corsFilter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Flight Recorder event emitted each time {@link CorsFilter} aborts CORS
+ * processing for a request, or rejects it outright.</p>
+ */
+@Name("com.jrfom.corsFilter.Rejection")
+@Label("CORS Rejection")
+@Category("CORS Filter")
+@Description("A request for which CORS processing was aborted or rejected")
+final class CorsRejectionEvent extends jdk.jfr.Event {
+  @Label("Origin")
+  String origin;
+
+  @Label("Method")
+  String method;
+
+  @Label("Reason")
+  String reason;
+
+  @Label("Origin List Size")
+  @Description("Number of origins in the allowed list")
+  int originListSize;
+}
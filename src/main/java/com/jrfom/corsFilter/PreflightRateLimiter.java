@@ -0,0 +1,169 @@
+package com.jrfom.corsFilter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Limits the rate at which CORS preflight requests are accepted. Each
+ * origin that is explicitly listed in the allowed list is given its own token
+ * bucket, while every other origin shares a single global bucket. This
+ * includes origins that are only allowed through the "*" wildcard. That way a
+ * client sending preflights with random {@code Origin} values can only
+ * exhaust the global bucket and never the buckets of listed origins.</p>
+ *
+ * <p>Per-origin buckets live in a fixed-size table of stripes. An origin is
+ * mapped to a stripe by its hash, so the memory used by the limiter does not
+ * grow with the number of distinct origins seen. Origins that hash to the
+ * same stripe share a bucket. The global bucket is one more slot at the end
+ * of the same table.</p>
+ *
+ * <p>Each bucket is a single {@code long} holding the bucket's "theoretical
+ * arrival time" (the generic cell rate algorithm, which is equivalent to a
+ * token bucket). Buckets are updated with a compare-and-set, so the limiter
+ * never blocks.</p>
+ *
+ * <p>The limiter can be configured via JavaConfig with
+ * {@link CorsFilter#setPreflightRateLimiter(PreflightRateLimiter)}, or via
+ * the web.xml parameters documented on {@link CorsFilter}.</p>
+ */
+public class PreflightRateLimiter {
+  // Distance between two stripes in the table, in longs. Keeps each stripe
+  // on its own cache line so that busy origins do not contend with each other.
+  private static final int STRIPE_PADDING = 8;
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+  // Largest interval plus burst window a bucket may span. Leaves the other
+  // half of the long range for the clock, i.e. about 146 years of uptime.
+  private static final long MAX_WINDOW = Long.MAX_VALUE / 2;
+
+  private final AtomicLongArray stripes;
+  private final int stripeMask;
+  private final long originInterval;
+  private final long originTolerance;
+
+  private final int globalIndex;
+  private final long globalInterval;
+  private final long globalTolerance;
+
+  private final LongSupplier clock;
+  private final long epoch;
+
+  /**
+   * <p>Creates a limiter with the given per-origin and global limits.</p>
+   *
+   * @param stripes The number of per-origin buckets. Rounded up to the next
+   *                power of two.
+   * @param originRate Number of preflights per second allowed for a single
+   *                   listed origin.
+   * @param originBurst Number of preflights a listed origin may send at
+   *                    once before being limited to {@code originRate}.
+   * @param globalRate Number of preflights per second allowed for all
+   *                   other origins combined.
+   * @param globalBurst Number of preflights other origins may send at once
+   *                    before being limited to {@code globalRate}.
+   */
+  public PreflightRateLimiter(int stripes, double originRate, int originBurst,
+                              double globalRate, int globalBurst)
+  {
+    this(stripes, originRate, originBurst, globalRate, globalBurst, System::nanoTime);
+  }
+
+  PreflightRateLimiter(int stripes, double originRate, int originBurst,
+                       double globalRate, int globalBurst, LongSupplier clock)
+  {
+    if (stripes < 1 || stripes > (1 << 20)) {
+      throw new IllegalArgumentException("stripes must be between 1 and 1048576");
+    }
+    if (!isPositiveAndFinite(originRate) || !isPositiveAndFinite(globalRate)) {
+      throw new IllegalArgumentException("rates must be finite and greater than zero");
+    }
+    if (originBurst < 1 || globalBurst < 1) {
+      throw new IllegalArgumentException("bursts must be at least one");
+    }
+
+    int size = Integer.highestOneBit(stripes);
+    if (size < stripes) {
+      size = size << 1;
+    }
+    this.stripes = new AtomicLongArray((size + 1) * STRIPE_PADDING);
+    this.stripeMask = size - 1;
+    this.globalIndex = size * STRIPE_PADDING;
+
+    this.originInterval = interval(originRate);
+    this.originTolerance = tolerance(this.originInterval, originBurst);
+    this.globalInterval = interval(globalRate);
+    this.globalTolerance = tolerance(this.globalInterval, globalBurst);
+
+    this.clock = clock;
+    this.epoch = clock.getAsLong();
+  }
+
+  /**
+   * <p>Attempts to take a token for a preflight request from the given
+   * origin.</p>
+   *
+   * @param origin The value of the request's {@code Origin} header.
+   * @param listed {@code true} if the origin is explicitly listed in the
+   *               allowed list, in which case the origin's own bucket is
+   *               used. Otherwise, including when the origin is only allowed
+   *               by the "*" wildcard, the global bucket is used.
+   * @return {@code true} if the request may proceed.
+   */
+  public boolean tryAcquire(String origin, boolean listed) {
+    long now = this.clock.getAsLong() - this.epoch;
+
+    if (!listed) {
+      return this.tryAcquire(this.globalIndex, now, this.globalInterval, this.globalTolerance);
+    }
+
+    int index = (this.spread(origin.hashCode()) & this.stripeMask) * STRIPE_PADDING;
+    return this.tryAcquire(index, now, this.originInterval, this.originTolerance);
+  }
+
+  public int getStripes() {
+    return this.stripeMask + 1;
+  }
+
+  private boolean tryAcquire(int index, long now, long interval, long tolerance) {
+    long tat;
+    long next;
+    do {
+      tat = this.stripes.get(index);
+      next = Math.max(tat, now);
+      if (next - now > tolerance) {
+        return false;
+      }
+    } while (!this.stripes.compareAndSet(index, tat, next + interval));
+
+    return true;
+  }
+
+  private static boolean isPositiveAndFinite(double rate) {
+    return rate > 0 && !Double.isInfinite(rate);
+  }
+
+  private static long interval(double rate) {
+    double interval = Math.ceil(NANOS_PER_SECOND / rate);
+    if (interval > MAX_WINDOW) {
+      throw new IllegalArgumentException("rate is too small: " + rate);
+    }
+    return (long) interval;
+  }
+
+  private static long tolerance(long interval, int burst) {
+    long tolerance;
+    try {
+      tolerance = Math.multiplyExact(interval, (long) (burst - 1));
+    } catch (ArithmeticException e) {
+      tolerance = Long.MAX_VALUE;
+    }
+    // interval is at most MAX_WINDOW, so this cannot overflow
+    if (tolerance > MAX_WINDOW - interval) {
+      throw new IllegalArgumentException("burst is too large for the rate: " + burst);
+    }
+    return tolerance;
+  }
+
+  private int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,144 @@
+package com.jrfom.corsFilter;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledCorsPolicyTest {
+  CorsFilterConfig config;
+
+  @Before
+  public void setup() {
+    this.config = CorsFilterConfig.wideOpenConfig();
+    this.config.removeOrigin("*");
+    this.config.addOrigin("http://example.com");
+    this.config.addOrigin("http://example.org");
+    this.config.exposeHeader("x-total-count");
+  }
+
+  @Test
+  public void testCanCompile() throws Exception {
+    assertTrue(CompiledCorsPolicy.canCompile(this.config));
+
+    for (int i = 0; i <= CompiledCorsPolicy.MAX_ENTRIES; i++) {
+      this.config.addOrigin("http://" + i + ".example.com");
+    }
+    assertFalse(CompiledCorsPolicy.canCompile(this.config));
+  }
+
+  @Test
+  public void testMatchesGenericPolicy() throws Exception {
+    HttpServletRequest[] requests = new HttpServletRequest[] {
+      MockHttp.request("GET", CorsHeaders.Origin, "http://example.com"),
+      MockHttp.request("POST", CorsHeaders.Origin, "http://example.org"),
+      MockHttp.request("GET", CorsHeaders.Origin, "http://example.net"),
+      MockHttp.request("DELETE", CorsHeaders.Origin, "http://example.com"),
+      MockHttp.request(
+        "OPTIONS",
+        CorsHeaders.Origin, "http://example.com",
+        CorsHeaders.RequestMethod, "POST",
+        CorsHeaders.RequestHeaders, "content-type,x-requested-with"
+      ),
+      MockHttp.request(
+        "OPTIONS",
+        CorsHeaders.Origin, "http://example.com",
+        CorsHeaders.RequestMethod, "PUT",
+        CorsHeaders.RequestHeaders, "content-type"
+      ),
+      MockHttp.request(
+        "OPTIONS",
+        CorsHeaders.Origin, "http://example.com",
+        CorsHeaders.RequestMethod, "POST",
+        CorsHeaders.RequestHeaders, "x-unknown"
+      )
+    };
+
+    for (boolean credentials : new boolean[] { true, false }) {
+      for (int maxAge : new int[] { 1800, -1 }) {
+        this.config.setSupportsCredentials(credentials);
+        this.config.setPreflightMaxAge(maxAge);
+
+        for (HttpServletRequest request : requests) {
+          assertEquals(
+            this.filter(false, request),
+            this.filter(true, request)
+          );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRecompiledWhenConfigChanges() throws Exception {
+    CorsFilter filter = new CorsFilter();
+    filter.setConfig(this.config);
+    filter.setSpecializePolicy(true);
+    HttpServletRequest request = MockHttp.request("GET", CorsHeaders.Origin, "http://example.net");
+
+    MockHttp.Response response = new MockHttp.Response();
+    filter.doFilter(request, response.proxy, MockHttp.noopChain);
+    assertFalse(response.headers.containsKey(CorsHeaders.AllowOrigin));
+
+    this.config.addOrigin("http://example.net");
+    response = new MockHttp.Response();
+    filter.doFilter(request, response.proxy, MockHttp.noopChain);
+    assertEquals("http://example.net", response.headers.get(CorsHeaders.AllowOrigin));
+  }
+
+  @Test
+  public void testNotCompiledWhenPolicyMethodsOverridden() throws Exception {
+    CorsFilter filter = new CorsFilter() {
+      @Override
+      protected Boolean originIsAllowed(String origin) {
+        return origin.endsWith(".example.net") || super.originIsAllowed(origin);
+      }
+    };
+    filter.setConfig(this.config);
+    filter.setSpecializePolicy(true);
+    HttpServletRequest request = MockHttp.request("GET", CorsHeaders.Origin, "http://api.example.net");
+
+    MockHttp.Response response = new MockHttp.Response();
+    filter.doFilter(request, response.proxy, MockHttp.noopChain);
+    assertEquals("http://api.example.net", response.headers.get(CorsHeaders.AllowOrigin));
+  }
+
+  @Test
+  public void testNotCompiledWhenToCSVOverridden() throws Exception {
+    CorsFilter filter = new CorsFilter() {
+      @Override
+      protected String toCSV(Set<String> set) {
+        return String.join(", ", set);
+      }
+    };
+    this.config.exposeHeader("x-request-id");
+    filter.setConfig(this.config);
+    filter.setSpecializePolicy(true);
+    HttpServletRequest request = MockHttp.request("GET", CorsHeaders.Origin, "http://example.com");
+
+    MockHttp.Response response = new MockHttp.Response();
+    filter.doFilter(request, response.proxy, MockHttp.noopChain);
+    assertEquals(
+      filter.toCSV(this.config.getExposedHeaders()),
+      response.headers.get(CorsHeaders.ExposeHeaders)
+    );
+    assertTrue(response.headers.get(CorsHeaders.ExposeHeaders).contains(", "));
+  }
+
+  private Map<String, String> filter(boolean specialize, HttpServletRequest request) throws Exception {
+    CorsFilter filter = new CorsFilter();
+    filter.setConfig(this.config);
+    filter.setSpecializePolicy(specialize);
+
+    MockHttp.Response response = new MockHttp.Response();
+    filter.doFilter(request, response.proxy, MockHttp.noopChain);
+    return response.headers;
+  }
+}
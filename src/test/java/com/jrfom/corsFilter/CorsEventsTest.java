@@ -0,0 +1,120 @@
+package com.jrfom.corsFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+
+import javax.servlet.Filter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CorsEventsTest {
+
+  @Test
+  public void testAvailable() throws Exception {
+    assertTrue(CorsEvents.isAvailable());
+  }
+
+  @Test
+  public void testFilterWorksWithoutFlightRecorder() throws Exception {
+    ClassLoader loader = new NoJfrClassLoader(CorsEventsTest.class.getClassLoader());
+
+    // Make sure the loader really hides Flight Recorder from the filter
+    try {
+      Class.forName(CorsOriginEvent.class.getName(), true, loader);
+      fail("jdk.jfr.Event should not be loadable");
+    } catch (NoClassDefFoundError expected) {
+      // expected
+    }
+
+    Method isAvailable = loader.loadClass(CorsEvents.class.getName())
+      .getDeclaredMethod("isAvailable");
+    isAvailable.setAccessible(true);
+    assertFalse((Boolean) isAvailable.invoke(null));
+
+    Filter filter = (Filter) loader.loadClass(CorsFilter.class.getName())
+      .getMethod("wideOpenFilter")
+      .invoke(null);
+    MockHttp.Response response = new MockHttp.Response();
+    filter.doFilter(
+      MockHttp.request(
+        "OPTIONS",
+        CorsHeaders.Origin, "http://example.com",
+        CorsHeaders.RequestMethod, "POST",
+        CorsHeaders.RequestHeaders, "content-type"
+      ),
+      response.proxy,
+      MockHttp.noopChain
+    );
+    assertEquals("http://example.com", response.headers.get(CorsHeaders.AllowOrigin));
+
+    response = new MockHttp.Response();
+    filter.doFilter(
+      MockHttp.request("DELETE", CorsHeaders.Origin, "http://example.com"),
+      response.proxy,
+      MockHttp.noopChain
+    );
+    assertFalse(response.headers.containsKey(CorsHeaders.AllowOrigin));
+  }
+
+  /**
+   * <p>Loads the main classes of this library itself, and refuses to load
+   * anything from {@code jdk.jfr}, as on a Java 8 runtime without Flight
+   * Recorder. Everything else, including the servlet API, comes from the
+   * parent so that it can be shared with the test.</p>
+   */
+  static class NoJfrClassLoader extends ClassLoader {
+    private final String mainLocation = CorsFilter.class
+      .getProtectionDomain().getCodeSource().getLocation().toString();
+
+    NoJfrClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.startsWith("jdk.jfr.")) {
+        throw new ClassNotFoundException(name);
+      }
+
+      String path = name.replace('.', '/') + ".class";
+      URL resource = this.getParent().getResource(path);
+      if (resource == null || !resource.toString().startsWith(this.mainLocation)) {
+        return super.loadClass(name, resolve);
+      }
+
+      synchronized (this.getClassLoadingLock(name)) {
+        Class<?> c = this.findLoadedClass(name);
+        if (c == null) {
+          byte[] bytes = read(resource);
+          c = this.defineClass(name, bytes, 0, bytes.length);
+        }
+        if (resolve) {
+          this.resolveClass(c);
+        }
+        return c;
+      }
+    }
+
+    private static byte[] read(URL resource) throws ClassNotFoundException {
+      try (InputStream in = resource.openStream()) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      } catch (IOException e) {
+        throw new ClassNotFoundException(resource.toString(), e);
+      }
+    }
+  }
+}
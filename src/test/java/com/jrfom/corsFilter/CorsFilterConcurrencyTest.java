@@ -0,0 +1,39 @@
+package com.jrfom.corsFilter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Smoke tests running {@link CorsFilterContentionHarness} for a short
+ * while. A race may not show up in a given run; the deterministic regression
+ * test for iterating the configuration while it changes is in
+ * {@link CorsFilterConfigTest}.</p>
+ */
+public class CorsFilterConcurrencyTest {
+
+  @Test
+  public void testNoViolationsWhileConfigChanges() throws Exception {
+    assertNoViolations(CorsFilterContentionHarness.newFilter());
+  }
+
+  @Test
+  public void testNoViolationsWhileSpecializedConfigChanges() throws Exception {
+    CorsFilter filter = CorsFilterContentionHarness.newFilter();
+    filter.setSpecializePolicy(true);
+    assertNoViolations(filter);
+  }
+
+  private static void assertNoViolations(CorsFilter filter) throws Exception {
+    CorsFilterContentionHarness.Result result = CorsFilterContentionHarness.run(
+      filter, 8, false, 300, 1000
+    );
+
+    assertTrue(result.operations > 0);
+    assertEquals(
+      "first violation: " + result.firstViolation,
+      0, result.violations
+    );
+  }
+}
@@ -110,4 +110,50 @@ public class CorsFilterConfigTest {
     this.config.removeOrigin("*");
     assertEquals(0, this.config.getOrigins().size());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testIterateWhileModifying() throws Exception {
+    this.config = CorsFilterConfig.wideOpenConfig();
+    this.config.exposeHeader("x-stable");
+
+    // Each set must be iterable while it is being changed, as happens when
+    // the filter builds a response while the config is being updated
+    int i = 0;
+    for (String header : this.config.getHeaders()) {
+      this.config.supportHeader("x-added-" + i);
+      this.config.unsupportHeader(header);
+      i++;
+    }
+    for (String header : this.config.getExposedHeaders()) {
+      this.config.exposeHeader("x-exposed-" + i);
+      this.config.unexposeHeader(header);
+      i++;
+    }
+    for (String method : this.config.getMethods()) {
+      this.config.addMethod("METHOD" + i);
+      this.config.removeMethod(method);
+      i++;
+    }
+    for (String origin : this.config.getOrigins()) {
+      this.config.addOrigin("http://" + i + ".example.com");
+      this.config.removeOrigin(origin);
+      i++;
+    }
+    assertTrue(i > 0);
+  }
+
+  @Test
+  public void testToCSVWhileModifying() throws Exception {
+    this.config = CorsFilterConfig.wideOpenConfig();
+    CorsFilter filter = new CorsFilter();
+
+    // Change the set between reads. The added names sort before the ones
+    // already iterated, so the loop visits each original header once.
+    StringBuilder seen = new StringBuilder();
+    for (String header : this.config.getHeaders()) {
+      seen.append(filter.toCSV(this.config.getHeaders()));
+      this.config.supportHeader("0-" + header);
+    }
+    assertTrue(seen.length() > 0);
+  }
+}
@@ -0,0 +1,315 @@
+package com.jrfom.corsFilter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * <p>Stress and scaling harness for {@link CorsFilter}. Runs
+ * {@link CorsFilter#doFilter} on an increasing number of threads while a
+ * writer thread mutates the filter's {@link CorsFilterConfig} at a fixed
+ * rate, and reports throughput, time spent blocked on monitors, and
+ * consistency violations. Requests and responses are the concrete stubs from
+ * {@link StubHttp}, reused across operations.</p>
+ *
+ * <p>Scaling can not exceed the number of available processors, which is
+ * printed with the results. The writer is paced so that it takes the same
+ * share of the CPU at every thread count; its achieved rate is reported for
+ * each run.</p>
+ *
+ * <p>The timed runs are a smoke test for concurrency problems, not a proof
+ * of their absence; a race may not show up in a given run.</p>
+ *
+ * <p>A consistency violation is either an exception thrown by the filter
+ * (e.g. a {@link java.util.ConcurrentModificationException}) or a preflight
+ * response that is missing values which never change during the run.</p>
+ *
+ * <p>Run it with {@code main}. The following system properties are
+ * available:</p>
+ *
+ * <ul>
+ *   <li>{@code cors.harness.threads}: the largest thread count. Default: 128</li>
+ *   <li>{@code cors.harness.millis}: duration of each run. Default: 1000</li>
+ *   <li>
+ *     {@code cors.harness.writes}: configuration changes per second made by
+ *     the writer. Each change adds and removes an origin and a header.
+ *     Default: 1000
+ *   </li>
+ *   <li>
+ *     {@code cors.harness.warmups}: number of unreported runs made before
+ *     measuring, alternating between 1 and 4 threads. Default: 6
+ *   </li>
+ * </ul>
+ *
+ * <p>Virtual threads are measured as well when the JVM supports them
+ * (Java 21 or later). Blocked time is not reported for virtual threads.</p>
+ */
+public class CorsFilterContentionHarness {
+  static final String stableOrigin = "http://example.com";
+  static final String stableMethods = "GET,HEAD,OPTIONS,POST";
+
+  static class Result {
+    int threads;
+    boolean virtual;
+    long operations;
+    long millis;
+    long blockedMillis = -1;
+    long writes;
+    long violations;
+    Throwable firstViolation;
+
+    double throughput() {
+      return this.operations * 1000.0 / this.millis;
+    }
+
+    double writeRate() {
+      return this.writes * 1000.0 / this.millis;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int maxThreads = Integer.getInteger("cors.harness.threads", 128);
+    long millis = Long.getLong("cors.harness.millis", 1000L);
+    int writes = Integer.getInteger("cors.harness.writes", 1000);
+    int warmups = Integer.getInteger("cors.harness.warmups", 6);
+    boolean virtualSupported = virtualThreadsSupported();
+
+    // Let the JIT finish compiling the filter before the single threaded
+    // baseline. A single run is not enough: throughput keeps rising over the
+    // first few runs, which would inflate every scaling figure.
+    for (int i = 0; i < warmups; i++) {
+      run(newFilter(), (i % 2 == 0) ? 1 : 4, false, millis, writes);
+    }
+
+    System.out.printf(
+      "available processors: %d, target writes/s: %d%n",
+      Runtime.getRuntime().availableProcessors(), writes
+    );
+    System.out.printf(
+      "%-9s %8s %14s %9s %12s %10s %11s%n",
+      "threads", "kind", "ops/s", "scaling", "blocked ms", "writes/s", "violations"
+    );
+    for (boolean virtual : new boolean[] { false, true }) {
+      if (virtual && !virtualSupported) {
+        System.out.println("Virtual threads not supported by this JVM; skipping");
+        continue;
+      }
+
+      double base = 0;
+      for (int threads = 1; threads <= maxThreads; threads *= 2) {
+        Result result = run(newFilter(), threads, virtual, millis, writes);
+        if (threads == 1) {
+          base = result.throughput();
+        }
+        System.out.printf(
+          "%-9d %8s %14.0f %8.2fx %12s %10.0f %11d%n",
+          threads,
+          virtual ? "virtual" : "platform",
+          result.throughput(),
+          result.throughput() / base,
+          result.blockedMillis < 0 ? "n/a" : Long.toString(result.blockedMillis),
+          result.writeRate(),
+          result.violations
+        );
+        if (result.firstViolation != null) {
+          System.out.println("  first violation: " + result.firstViolation);
+        }
+      }
+    }
+  }
+
+  static CorsFilter newFilter() {
+    CorsFilterConfig config = CorsFilterConfig.wideOpenConfig();
+    config.removeOrigin("*");
+    config.addOrigin(stableOrigin);
+    config.exposeHeader("x-stable");
+
+    CorsFilter filter = new CorsFilter();
+    filter.setConfig(config);
+    return filter;
+  }
+
+  /**
+   * <p>Runs the filter on {@code threads} reader threads for {@code millis}
+   * milliseconds while a writer thread makes {@code writesPerSecond} changes
+   * to the configuration.</p>
+   */
+  static Result run(CorsFilter filter, int threads, boolean virtual, long millis,
+                    int writesPerSecond) throws Exception
+  {
+    ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    boolean measureBlocked = !virtual && mx.isThreadContentionMonitoringSupported();
+    boolean monitoringWasEnabled = measureBlocked && mx.isThreadContentionMonitoringEnabled();
+    if (measureBlocked) {
+      mx.setThreadContentionMonitoringEnabled(true);
+    }
+    try {
+      return run(filter, threads, virtual, millis, writesPerSecond, measureBlocked ? mx : null);
+    } finally {
+      if (measureBlocked) {
+        mx.setThreadContentionMonitoringEnabled(monitoringWasEnabled);
+      }
+    }
+  }
+
+  private static Result run(CorsFilter filter, int threads, boolean virtual, long millis,
+                            int writesPerSecond, ThreadMXBean mx) throws Exception
+  {
+    boolean measureBlocked = mx != null;
+    long writeInterval = TimeUnit.SECONDS.toNanos(1) / writesPerSecond;
+
+    ExecutorService readers = virtual ?
+      virtualExecutor() : Executors.newFixedThreadPool(threads);
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong operations = new AtomicLong();
+    AtomicLong blocked = new AtomicLong();
+    AtomicLong writes = new AtomicLong();
+    AtomicLong violations = new AtomicLong();
+    List<Throwable> firstViolation = new ArrayList<>();
+
+    Thread writer = new Thread(() -> {
+      CorsFilterConfig config = filter.getConfig();
+      long i = 0;
+      long next = System.nanoTime();
+      while (running.get()) {
+        String name = "x-churn-" + (i++ % 16);
+        config.addOrigin("http://" + name + ".example.com");
+        config.exposeHeader(name);
+        config.unexposeHeader(name);
+        config.unsupportHeader(name);
+        config.removeOrigin("http://" + name + ".example.com");
+
+        // Pace on a fixed schedule so a late wake up does not lower the rate
+        next += writeInterval;
+        long delay = next - System.nanoTime();
+        if (delay > 0) {
+          LockSupport.parkNanos(delay);
+        }
+      }
+      writes.set(i);
+    }, "cors-harness-writer");
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      futures.add(readers.submit(() -> {
+        HttpServletRequest simple = new StubHttp.Request("GET", stableOrigin, null, null);
+        HttpServletRequest preflight = new StubHttp.Request(
+          "OPTIONS", stableOrigin, "POST", "content-type"
+        );
+        StubHttp.Response response = new StubHttp.Response();
+        long ops = 0;
+        while (running.get()) {
+          response.clear();
+          try {
+            boolean isPreflight = (ops & 1) == 0;
+            filter.doFilter(isPreflight ? preflight : simple, response, MockHttp.noopChain);
+            String problem = isPreflight ?
+              checkPreflight(response) : checkSimple(response);
+            if (problem != null) {
+              recordViolation(violations, firstViolation, new IllegalStateException(problem));
+            }
+          } catch (Throwable e) {
+            recordViolation(violations, firstViolation, e);
+          }
+          ops++;
+        }
+        operations.addAndGet(ops);
+        if (measureBlocked) {
+          ThreadInfo info = mx.getThreadInfo(Thread.currentThread().getId());
+          blocked.addAndGet(info.getBlockedTime());
+        }
+      }));
+    }
+
+    writer.start();
+    long start = System.nanoTime();
+    Thread.sleep(millis);
+    running.set(false);
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    writer.join();
+    readers.shutdown();
+
+    Result result = new Result();
+    result.threads = threads;
+    result.virtual = virtual;
+    result.operations = operations.get();
+    result.millis = Math.max(elapsed, 1);
+    result.blockedMillis = measureBlocked ? blocked.get() : -1;
+    result.writes = writes.get();
+    result.violations = violations.get();
+    result.firstViolation = firstViolation.isEmpty() ? null : firstViolation.get(0);
+    return result;
+  }
+
+  private static String checkSimple(StubHttp.Response response) {
+    if (!stableOrigin.equals(response.allowOrigin)) {
+      return "simple response missing allow origin header";
+    }
+    String exposed = response.exposeHeaders;
+    if (exposed == null || !exposed.contains("x-stable")) {
+      return "simple response missing stable exposed header: " + exposed;
+    }
+    return null;
+  }
+
+  private static String checkPreflight(StubHttp.Response response) {
+    if (!stableOrigin.equals(response.allowOrigin)) {
+      return "preflight response missing allow origin header";
+    }
+    if (!stableMethods.equals(response.allowMethods)) {
+      return "preflight response has wrong allow methods header: " + response.allowMethods;
+    }
+    String headers = response.allowHeaders;
+    if (headers == null || !headers.contains("content-type") || !headers.contains("x-stable")) {
+      return "preflight response missing stable allowed headers: " + headers;
+    }
+    return null;
+  }
+
+  private static void recordViolation(AtomicLong violations, List<Throwable> first, Throwable e) {
+    violations.incrementAndGet();
+    synchronized (first) {
+      if (first.isEmpty()) {
+        first.add(e);
+      }
+    }
+  }
+
+  static boolean virtualThreadsSupported() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * <p>Returns {@code Executors.newVirtualThreadPerTaskExecutor()}. Looked up
+   * reflectively so that this class still compiles for Java 8; only call it
+   * when {@link #virtualThreadsSupported()} is {@code true}.</p>
+   */
+  static ExecutorService virtualExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+        .getMethod("newVirtualThreadPerTaskExecutor")
+        .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Virtual threads are not supported", e);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.jrfom.corsFilter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorsFilterEventsTest {
+
+  @Test
+  public void testEventsRecorded() throws Exception {
+    CorsFilterConfig config = CorsFilterConfig.wideOpenConfig();
+    config.removeOrigin("*");
+    config.addOrigin("http://example.com");
+    CorsFilter filter = new CorsFilter();
+    filter.setConfig(config);
+
+    Path file = Files.createTempFile("cors", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(CorsOriginEvent.class);
+      recording.enable(CorsPreflightEvent.class);
+      recording.enable(CorsRejectionEvent.class);
+      recording.start();
+
+      filter.doFilter(
+        MockHttp.request(
+          "OPTIONS",
+          CorsHeaders.Origin, "http://example.com",
+          CorsHeaders.RequestMethod, "POST",
+          CorsHeaders.RequestHeaders, "content-type"
+        ),
+        new MockHttp.Response().proxy,
+        MockHttp.noopChain
+      );
+      filter.doFilter(
+        MockHttp.request("GET", CorsHeaders.Origin, "http://evil.example.com"),
+        new MockHttp.Response().proxy,
+        MockHttp.noopChain
+      );
+
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Files.delete(file);
+
+    List<RecordedEvent> origins = byName(events, "com.jrfom.corsFilter.OriginResolution");
+    assertEquals(2, origins.size());
+    assertEquals(1, origins.get(0).getInt("originListSize"));
+
+    List<RecordedEvent> preflights = byName(events, "com.jrfom.corsFilter.PreflightEvaluation");
+    assertEquals(1, preflights.size());
+    assertEquals("allowed", preflights.get(0).getString("decision"));
+
+    List<RecordedEvent> rejections = byName(events, "com.jrfom.corsFilter.Rejection");
+    assertEquals(1, rejections.size());
+    assertEquals("origin not allowed", rejections.get(0).getString("reason"));
+    assertEquals("http://evil.example.com", rejections.get(0).getString("origin"));
+  }
+
+  private static List<RecordedEvent> byName(List<RecordedEvent> events, String name) {
+    return events.stream()
+      .filter( (e) -> e.getEventType().getName().equals(name) )
+      .sorted( (a, b) -> a.getStartTime().compareTo(b.getStartTime()) )
+      .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,184 @@
+package com.jrfom.corsFilter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CorsFilterRateLimitTest {
+  AtomicInteger chained;
+  FilterChain chain;
+
+  @Before
+  public void setup() {
+    this.chained = new AtomicInteger();
+    this.chain = (req, res) -> this.chained.incrementAndGet();
+  }
+
+  @Test
+  public void testNoLimiterByDefault() throws Exception {
+    CorsFilter filter = new CorsFilter();
+    filter.init(MockHttp.filterConfig());
+
+    assertNull(filter.getPreflightRateLimiter());
+  }
+
+  @Test
+  public void testInitParameters() throws Exception {
+    CorsFilter filter = new CorsFilter();
+    filter.init(MockHttp.filterConfig(
+      "cors.allowed.origins", "http://example.com",
+      "cors.preflight.ratelimit", "0.001",
+      "cors.preflight.ratelimit.burst", "3",
+      "cors.preflight.ratelimit.global", "0.001",
+      "cors.preflight.ratelimit.global.burst", "2",
+      "cors.preflight.ratelimit.stripes", "64"
+    ));
+
+    assertEquals(64, filter.getPreflightRateLimiter().getStripes());
+    assertEquals(3, this.allowedPreflights(filter, "http://example.com", 5));
+    assertEquals(2, this.allowedPreflights(filter, "http://evil.example.com", 5));
+  }
+
+  @Test
+  public void testDefaultBurstsAndGlobalLimit() throws Exception {
+    CorsFilter filter = new CorsFilter();
+    filter.init(MockHttp.filterConfig(
+      "cors.allowed.origins", "http://example.com",
+      "cors.preflight.ratelimit", "0.001"
+    ));
+
+    assertEquals(1024, filter.getPreflightRateLimiter().getStripes());
+    assertEquals(10, this.allowedPreflights(filter, "http://example.com", 15));
+
+    // The global bucket does not inherit the per-origin rate: it defaults to
+    // 10 per second with a burst of 10, so at most one more token can have
+    // been added while these requests ran
+    int global = this.allowedPreflights(filter, "http://evil.example.com", 15);
+    assertTrue(global >= 10 && global <= 11);
+  }
+
+  @Test(expected = ServletException.class)
+  public void testWildcardRequiresGlobalLimit() throws Exception {
+    // cors.allowed.origins defaults to "*"
+    new CorsFilter().init(MockHttp.filterConfig(
+      "cors.preflight.ratelimit", "10"
+    ));
+  }
+
+  @Test
+  public void testWildcardWithGlobalLimit() throws Exception {
+    CorsFilter filter = new CorsFilter();
+    filter.init(MockHttp.filterConfig(
+      "cors.preflight.ratelimit", "0.001",
+      "cors.preflight.ratelimit.global", "0.001",
+      "cors.preflight.ratelimit.global.burst", "2"
+    ));
+
+    assertEquals(1, this.allowedPreflights(filter, "http://a.example.com", 1));
+    assertEquals(1, this.allowedPreflights(filter, "http://b.example.com", 1));
+    assertEquals(0, this.allowedPreflights(filter, "http://c.example.com", 1));
+  }
+
+  @Test
+  public void testRejectedPreflightSkipsChain() throws Exception {
+    CorsFilter filter = this.limitedFilter(CorsFilterConfig.wideOpenConfig());
+    HttpServletRequest preflight = preflight("http://example.com");
+
+    MockHttp.Response response = new MockHttp.Response();
+    filter.doFilter(preflight, response.proxy, this.chain);
+    assertEquals(200, response.status);
+    assertEquals(1, this.chained.get());
+
+    response = new MockHttp.Response();
+    filter.doFilter(preflight, response.proxy, this.chain);
+    assertEquals(429, response.status);
+    assertEquals(1, this.chained.get());
+    assertNull(response.headers.get(CorsHeaders.AllowOrigin));
+  }
+
+  @Test
+  public void testWildcardOriginsShareGlobalBucket() throws Exception {
+    // With the "*" wildcard no origin is listed, so random origins must not
+    // each get a fresh bucket
+    CorsFilter filter = this.limitedFilter(CorsFilterConfig.wideOpenConfig());
+
+    assertEquals(1, this.allowedPreflights(filter, "http://a.example.com", 1));
+    assertEquals(0, this.allowedPreflights(filter, "http://b.example.com", 1));
+    assertEquals(0, this.allowedPreflights(filter, "http://c.example.com", 1));
+  }
+
+  @Test
+  public void testListedOriginNotAffectedByGlobalBucket() throws Exception {
+    CorsFilterConfig config = CorsFilterConfig.wideOpenConfig();
+    config.removeOrigin("*");
+    config.addOrigin("http://example.com");
+    CorsFilter filter = this.limitedFilter(config);
+
+    assertEquals(1, this.allowedPreflights(filter, "http://evil.example.com", 3));
+    assertEquals(1, this.allowedPreflights(filter, "http://example.com", 3));
+  }
+
+  @Test
+  public void testNonPreflightOptionsNotLimited() throws Exception {
+    CorsFilter filter = this.limitedFilter(CorsFilterConfig.wideOpenConfig());
+    HttpServletRequest options = MockHttp.request("OPTIONS", CorsHeaders.Origin, "http://example.com");
+
+    for (int i = 0; i < 3; i++) {
+      MockHttp.Response response = new MockHttp.Response();
+      filter.doFilter(options, response.proxy, this.chain);
+      assertEquals(200, response.status);
+    }
+    assertEquals(3, this.chained.get());
+  }
+
+  @Test
+  public void testUsesOverriddenPreflightCheck() throws Exception {
+    CorsFilter filter = new CorsFilter() {
+      @Override
+      protected Boolean isPreflightRequest(HttpServletRequest request) {
+        return false;
+      }
+    };
+    filter.setConfig(CorsFilterConfig.wideOpenConfig());
+    filter.setPreflightRateLimiter(new PreflightRateLimiter(16, 0.001, 1, 0.001, 1));
+
+    assertEquals(3, this.allowedPreflights(filter, "http://example.com", 3));
+  }
+
+  private CorsFilter limitedFilter(CorsFilterConfig config) {
+    CorsFilter filter = new CorsFilter();
+    filter.setConfig(config);
+    filter.setPreflightRateLimiter(new PreflightRateLimiter(16, 0.001, 1, 0.001, 1));
+    return filter;
+  }
+
+  private int allowedPreflights(CorsFilter filter, String origin, int attempts) throws Exception {
+    int allowed = 0;
+    for (int i = 0; i < attempts; i++) {
+      MockHttp.Response response = new MockHttp.Response();
+      filter.doFilter(preflight(origin), response.proxy, this.chain);
+      if (response.status != 429) {
+        allowed++;
+      }
+    }
+    return allowed;
+  }
+
+  private static HttpServletRequest preflight(String origin) {
+    return MockHttp.request(
+      "OPTIONS",
+      CorsHeaders.Origin, origin,
+      CorsHeaders.RequestMethod, "POST",
+      CorsHeaders.RequestHeaders, "content-type"
+    );
+  }
+}
@@ -24,4 +24,11 @@ public class CorsFilterTest {
 
     assertEquals(strItems, csv);
   }
+
+  @Test
+  public void testToCSVEmpty() throws Exception {
+    CorsFilter filter = new CorsFilter();
+
+    assertEquals("", filter.toCSV(new TreeSet<>()));
+  }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.jrfom.corsFilter;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Minimal stand-ins for the servlet API types used by {@link CorsFilter}.
+ * Only the methods the filter calls are implemented.</p>
+ */
+class MockHttp {
+  static final FilterChain noopChain = (req, res) -> {};
+
+  static FilterConfig filterConfig(String... paramPairs) {
+    Map<String, String> params = new HashMap<>();
+    for (int i = 0; i < paramPairs.length; i += 2) {
+      params.put(paramPairs[i], paramPairs[i + 1]);
+    }
+
+    return (FilterConfig) Proxy.newProxyInstance(
+      MockHttp.class.getClassLoader(),
+      new Class<?>[] { FilterConfig.class },
+      (proxy, m, args) -> {
+        switch (m.getName()) {
+          case "getInitParameter":
+            return params.get((String) args[0]);
+          case "getInitParameterNames":
+            return Collections.enumeration(params.keySet());
+          default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+      }
+    );
+  }
+
+  static HttpServletRequest request(String method, String... headerPairs) {
+    Map<String, String> headers = new HashMap<>();
+    for (int i = 0; i < headerPairs.length; i += 2) {
+      headers.put(headerPairs[i].toLowerCase(), headerPairs[i + 1]);
+    }
+
+    return (HttpServletRequest) Proxy.newProxyInstance(
+      MockHttp.class.getClassLoader(),
+      new Class<?>[] { HttpServletRequest.class },
+      (proxy, m, args) -> {
+        switch (m.getName()) {
+          case "getMethod":
+            return method;
+          case "getHeader":
+            return headers.get(((String) args[0]).toLowerCase());
+          case "getHeaderNames":
+            return Collections.enumeration(headers.keySet());
+          default:
+            throw new UnsupportedOperationException(m.getName());
+        }
+      }
+    );
+  }
+
+  static class Response {
+    final Map<String, String> headers = new ConcurrentHashMap<>();
+    volatile int status = HttpServletResponse.SC_OK;
+    final HttpServletResponse proxy;
+
+    Response() {
+      this.proxy = (HttpServletResponse) Proxy.newProxyInstance(
+        MockHttp.class.getClassLoader(),
+        new Class<?>[] { HttpServletResponse.class },
+        (p, m, args) -> {
+          switch (m.getName()) {
+            case "addHeader":
+            case "setHeader":
+              this.headers.put(((String) args[0]).toLowerCase(), (String) args[1]);
+              return null;
+            case "setStatus":
+              this.status = (Integer) args[0];
+              return null;
+            case "getStatus":
+              return this.status;
+            default:
+              throw new UnsupportedOperationException(m.getName());
+          }
+        }
+      );
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.jrfom.corsFilter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreflightRateLimiterTest {
+  AtomicLong clock;
+  PreflightRateLimiter limiter;
+
+  @Before
+  public void setup() {
+    this.clock = new AtomicLong(-5_000_000_000L);
+    // 2 per second with a burst of 3 for known origins, 1 per second with a
+    // burst of 1 for unknown origins
+    this.limiter = new PreflightRateLimiter(16, 2, 3, 1, 1, this.clock::get);
+  }
+
+  @Test
+  public void testStripesRoundedToPowerOfTwo() throws Exception {
+    assertEquals(16, this.limiter.getStripes());
+    assertEquals(1024, new PreflightRateLimiter(1000, 1, 1, 1, 1).getStripes());
+  }
+
+  @Test
+  public void testKnownOriginBurstAndRefill() throws Exception {
+    assertTrue(this.limiter.tryAcquire("http://example.com", true));
+    assertTrue(this.limiter.tryAcquire("http://example.com", true));
+    assertTrue(this.limiter.tryAcquire("http://example.com", true));
+    assertFalse(this.limiter.tryAcquire("http://example.com", true));
+
+    this.clock.addAndGet(500_000_000L);
+    assertTrue(this.limiter.tryAcquire("http://example.com", true));
+    assertFalse(this.limiter.tryAcquire("http://example.com", true));
+  }
+
+  @Test
+  public void testUnlistedOriginsShareGlobalBucket() throws Exception {
+    assertTrue(this.limiter.tryAcquire("http://a.example.com", false));
+    assertFalse(this.limiter.tryAcquire("http://b.example.com", false));
+
+    // Listed origins are not affected by the exhausted global bucket
+    assertTrue(this.limiter.tryAcquire("http://example.com", true));
+
+    this.clock.addAndGet(1_000_000_000L);
+    assertTrue(this.limiter.tryAcquire("http://c.example.com", false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRate() throws Exception {
+    new PreflightRateLimiter(16, 0, 1, 1, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNaNRate() throws Exception {
+    new PreflightRateLimiter(16, Double.NaN, 1, 1, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInfiniteRate() throws Exception {
+    new PreflightRateLimiter(16, 1, 1, Double.POSITIVE_INFINITY, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRateTooSmall() throws Exception {
+    new PreflightRateLimiter(16, 1e-300, 1, 1, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIntervalOverflows() throws Exception {
+    // One preflight every 1e20 nanoseconds does not fit in a long
+    new PreflightRateLimiter(16, 1e-11, 3, 1, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBurstOverflows() throws Exception {
+    // A 10 second interval fits, but times a burst of Integer.MAX_VALUE it
+    // must not wrap around to a negative tolerance
+    new PreflightRateLimiter(16, 1, 1, 0.1, Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void testSmallRateLargeBurstWithinRange() throws Exception {
+    PreflightRateLimiter limiter = new PreflightRateLimiter(16, 0.001, 1000, 1, 1, this.clock::get);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(limiter.tryAcquire("http://example.com", true));
+    }
+    assertFalse(limiter.tryAcquire("http://example.com", true));
+  }
+}
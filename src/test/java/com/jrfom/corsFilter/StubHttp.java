@@ -0,0 +1,108 @@
+package com.jrfom.corsFilter;
+
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <p>Small concrete request and response stubs with field backed headers,
+ * for measurements where the cost of {@link MockHttp}'s proxies would hide
+ * the cost of the filter. Only the methods {@link CorsFilter} calls are
+ * implemented; the wrapped objects are never called.</p>
+ */
+class StubHttp {
+
+  static final class Request extends HttpServletRequestWrapper {
+    private final String method;
+    private final String origin;
+    private final String requestMethod;
+    private final String requestHeaders;
+
+    Request(String method, String origin, String requestMethod, String requestHeaders) {
+      super(MockHttp.request(method));
+      this.method = method;
+      this.origin = origin;
+      this.requestMethod = requestMethod;
+      this.requestHeaders = requestHeaders;
+    }
+
+    @Override
+    public String getMethod() {
+      return this.method;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      switch (name) {
+        case CorsHeaders.Origin:
+          return this.origin;
+        case CorsHeaders.RequestMethod:
+          return this.requestMethod;
+        case CorsHeaders.RequestHeaders:
+          return this.requestHeaders;
+        default:
+          return null;
+      }
+    }
+  }
+
+  /**
+   * <p>Keeps the CORS response headers in fields, plus a running hash of
+   * everything added so that the work of producing the headers cannot be
+   * optimized away. Call {@link #clear()} to reuse it.</p>
+   */
+  static final class Response extends HttpServletResponseWrapper {
+    String allowOrigin;
+    String allowMethods;
+    String allowHeaders;
+    String exposeHeaders;
+    int status;
+    private int hash;
+
+    Response() {
+      super(new MockHttp.Response().proxy);
+      this.clear();
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      switch (name) {
+        case CorsHeaders.AllowOrigin:
+          this.allowOrigin = value;
+          break;
+        case CorsHeaders.AllowMethods:
+          this.allowMethods = value;
+          break;
+        case CorsHeaders.AllowHeaders:
+          this.allowHeaders = value;
+          break;
+        case CorsHeaders.ExposeHeaders:
+          this.exposeHeaders = value;
+          break;
+        default:
+          break;
+      }
+      this.hash = 31 * this.hash + name.hashCode() + value.length();
+    }
+
+    @Override
+    public void setStatus(int sc) {
+      this.status = sc;
+      this.hash = 31 * this.hash + sc;
+    }
+
+    void clear() {
+      this.allowOrigin = null;
+      this.allowMethods = null;
+      this.allowHeaders = null;
+      this.exposeHeaders = null;
+      this.status = 200;
+      this.hash = 0;
+    }
+
+    int consume() {
+      int result = this.hash;
+      this.clear();
+      return result;
+    }
+  }
+}